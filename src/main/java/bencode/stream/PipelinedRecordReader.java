@@ -0,0 +1,262 @@
+package bencode.stream;
+
+import bencode.type.BencodeType;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Record reader decoding batches on worker threads</p>
+ * <p>
+ * One I/O thread reads the stream and finds record boundaries with {@link RecordReader#readRecordBatch(int)}, every batch
+ * of raw records is decoded by a pool of worker threads. Batches are returned by {@link #nextBatch()} in stream order.
+ * The number of batches read ahead is bounded, so the I/O thread waits when the consumer falls behind.
+ * <p>
+ * Errors follow {@link RecordReader}: a batch hitting an error returns the records decoded before it and the error is thrown
+ * by the next call. A record failing to decode is skipped, the call after the error continues with the following records.
+ * A framing or I/O error ends the stream and is thrown by every later call.
+ * <p>
+ * The I/O thread closes the underlying reader when the stream ends or fails, worker threads stop once the last batch
+ * is submitted. {@link #close()} closes the reader itself to abort a read the I/O thread is blocked in, e.g. on a quiet socket,
+ * and then waits for the I/O thread.
+ */
+public class PipelinedRecordReader implements Closeable {
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+    /**
+     * Queued by {@link #close()} to wake a consumer waiting for a batch
+     */
+    private static final Future<List<Object>> CLOSED = CompletableFuture.completedFuture(Collections.emptyList());
+
+    private final RecordReader reader;
+    private final int batchSize;
+    private final ExecutorService workers;
+    /**
+     * Decoded batches in stream order. An element is either a BencodeType or the Exception thrown while decoding the record
+     * at its position, an empty list marks the end of the stream.
+     */
+    private final BlockingQueue<Future<List<Object>>> batches;
+    private final Thread ioThread;
+    private volatile boolean closed;
+    private boolean finished;
+    private volatile IOException closeFailure;
+    private Throwable failure;
+    private List<Object> current = Collections.emptyList();
+    private int position;
+
+    /**
+     * @param reader        source of records, owned and closed by this reader
+     * @param batchSize     maximal number of records in a batch
+     * @param workerThreads number of decoding threads
+     */
+    public PipelinedRecordReader(RecordReader reader, int batchSize, int workerThreads) {
+        this(reader, batchSize, workerThreads, workerThreads * 2);
+    }
+
+    /**
+     * @param reader             source of records, owned and closed by this reader
+     * @param batchSize          maximal number of records in a batch
+     * @param workerThreads      number of decoding threads
+     * @param maxBatchesInFlight maximal number of batches read ahead of the consumer
+     */
+    public PipelinedRecordReader(RecordReader reader, int batchSize, int workerThreads, int maxBatchesInFlight) {
+        if (batchSize <= 0 || workerThreads <= 0 || maxBatchesInFlight <= 0)
+            throw new IllegalArgumentException("Batch size, worker threads and batches in flight must be positive");
+
+        int id = THREAD_COUNTER.incrementAndGet();
+        AtomicInteger workerCounter = new AtomicInteger();
+
+        this.reader = reader;
+        this.batchSize = batchSize;
+        this.batches = new ArrayBlockingQueue<>(maxBatchesInFlight);
+        this.workers = Executors.newFixedThreadPool(workerThreads, r -> {
+            Thread thread = new Thread(r, "bencode-decoder-" + id + "-" + workerCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.ioThread = new Thread(this::readBatches, "bencode-record-reader-" + id);
+        this.ioThread.setDaemon(true);
+        this.ioThread.start();
+    }
+
+    /**
+     * Returns the next decoded batch, waiting for it if needed
+     *
+     * @return decoded records, empty list at the end of the stream
+     * @throws IOException if the reader is closed, also thrown to a consumer waiting while another thread closes it
+     * @throws bencode.exception.InconsistentInputException
+     * @throws java.lang.NumberFormatException
+     */
+    public List<BencodeType> nextBatch() throws IOException {
+        if (closed)
+            throw new IOException("Reader is closed");
+
+        if (position == current.size()) {
+            if (failure != null)
+                throwFailure();
+            if (finished)
+                return Collections.emptyList();
+
+            current = takeBatch();
+            position = 0;
+
+            if (current.isEmpty()) {
+                finished = true;
+                return Collections.emptyList();
+            }
+        }
+
+        Object item = current.get(position);
+        if (item instanceof Exception) {
+            position++;
+            if (item instanceof IOException)
+                throw (IOException) item;
+            throw (RuntimeException) item;
+        }
+
+        List<BencodeType> batch = new ArrayList<>(current.size() - position);
+        while (position < current.size() && current.get(position) instanceof BencodeType)
+            batch.add((BencodeType) current.get(position++));
+
+        return batch;
+    }
+
+    private List<Object> takeBatch() throws IOException {
+        try {
+            Future<List<Object>> batch = batches.take();
+            if (batch == CLOSED)
+                throw new IOException("Reader is closed");
+            return batch.get();
+        } catch (CancellationException e) {
+            throw new IOException("Reader is closed");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a batch");
+        } catch (ExecutionException e) {
+            failure = e.getCause();
+            throwFailure();
+            return null;
+        }
+    }
+
+    /**
+     * Rethrows the failure of the I/O thread unchanged, as {@link RecordReader} would throw it
+     */
+    private void throwFailure() throws IOException {
+        if (failure instanceof IOException)
+            throw (IOException) failure;
+        if (failure instanceof RuntimeException)
+            throw (RuntimeException) failure;
+        if (failure instanceof Error)
+            throw (Error) failure;
+        throw new IOException(failure);
+    }
+
+    /**
+     * Stops the I/O and worker threads and closes the underlying reader. A read the I/O thread is blocked in fails
+     * once the reader is closed, which is a normal shutdown for the I/O thread. {@link #nextBatch()} throws IOException afterwards,
+     * so a closed reader is not mistaken for the end of the stream.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        ioThread.interrupt();
+
+        // an interrupt does not wake a blocked InputStream read, closing the source does
+        try {
+            reader.close();
+        } catch (IOException e) {
+            closeFailure = e;
+        }
+
+        // batches never started would leave their futures incomplete
+        for (Runnable task : workers.shutdownNow())
+            ((Future<?>) task).cancel(false);
+
+        try {
+            ioThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while closing the reader");
+        }
+
+        // the I/O thread has stopped, so there is room for the marker once the queue is drained
+        Future<List<Object>> batch;
+        while ((batch = batches.poll()) != null)
+            batch.cancel(false);
+        batches.offer(CLOSED);
+
+        if (closeFailure != null)
+            throw closeFailure;
+    }
+
+    private void readBatches() {
+        try {
+            Future<List<Object>> last;
+
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    List<byte[]> records = reader.readRecordBatch(batchSize);
+
+                    if (records.isEmpty())
+                        break;
+
+                    batches.put(workers.submit(() -> decode(records)));
+                }
+
+                last = CompletableFuture.completedFuture(Collections.emptyList());
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Throwable e) {
+                if (closed)
+                    return;
+
+                // errors are passed on too, otherwise the consumer would wait for a batch forever
+                CompletableFuture<List<Object>> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                last = failed;
+            }
+
+            batches.put(last);
+        } catch (InterruptedException e) {
+            // closed by the consumer
+        } finally {
+            workers.shutdown();
+            try {
+                reader.close();
+            } catch (IOException e) {
+                if (!closed)
+                    closeFailure = e;
+            }
+        }
+    }
+
+    private static List<Object> decode(List<byte[]> records) {
+        List<Object> batch = new ArrayList<>(records.size());
+
+        for (byte[] record : records) {
+            try {
+                batch.add(BencodeType.decode(new ByteArrayInputStream(record)));
+            } catch (IOException | RuntimeException e) {
+                batch.add(e);
+            }
+        }
+
+        return batch;
+    }
+}
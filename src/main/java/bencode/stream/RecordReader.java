@@ -0,0 +1,329 @@
+package bencode.stream;
+
+import bencode.exception.InconsistentInputException;
+import bencode.type.BencodeType;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>Reader of concatenated bencoded values</p>
+ * <p>
+ * Log and replication streams are sequences of values written back to back, e.g. i1e4:spamli2ee. The reader fills an internal
+ * buffer in large chunks, finds record boundaries with a scanner and decodes each record from the buffer.
+ * A stream ending between records is a clean end and is reported by null or an empty batch,
+ * a stream ending inside a record throws InconsistentInputException.
+ * <p>
+ * A batch reads from the source only while it is empty: once it holds a record, it is completed from the buffered bytes and
+ * returned, so records already received are not held back waiting for a live stream.
+ * A batch which hits an error after some records have been read returns these records, the error is thrown by the next call.
+ * <p>
+ * Errors are handled in two ways. A record which is framed correctly but fails to decode, e.g. i--e, is skipped: the exception
+ * is thrown once and the next call continues with the following record. Framing errors (a wrong literal between records,
+ * a truncated record, a record above the maximal record size or an I/O error) leave no way to find the next record,
+ * so the same exception is thrown by every later call.
+ * <p>
+ * The reader is not thread safe, see {@link PipelinedRecordReader} for decoding on several threads.
+ */
+public class RecordReader implements Closeable {
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    private static final int DEFAULT_MAX_RECORD_SIZE = 256 * 1024 * 1024;
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    private final InputStream inputStream;
+    private final ReadableByteChannel channel;
+    private final RecordScanner scanner = new RecordScanner();
+    private final int maxRecordSize;
+
+    private byte[] buffer;
+    private int start;
+    private int scanned;
+    private int end;
+    private boolean eof;
+    private IOException failure;
+    private Exception deferred;
+
+    public RecordReader(InputStream inputStream) {
+        this(inputStream, null, DEFAULT_BUFFER_SIZE, DEFAULT_MAX_RECORD_SIZE);
+    }
+
+    public RecordReader(InputStream inputStream, int bufferSize) {
+        this(inputStream, null, bufferSize, DEFAULT_MAX_RECORD_SIZE);
+    }
+
+    /**
+     * @param inputStream   InputStream with bencoded records
+     * @param bufferSize    initial buffer size
+     * @param maxRecordSize maximal size of a record in bytes, a larger record is a framing error
+     */
+    public RecordReader(InputStream inputStream, int bufferSize, int maxRecordSize) {
+        this(inputStream, null, bufferSize, maxRecordSize);
+    }
+
+    /**
+     * @param channel blocking channel with bencoded records
+     */
+    public RecordReader(ReadableByteChannel channel) {
+        this(null, channel, DEFAULT_BUFFER_SIZE, DEFAULT_MAX_RECORD_SIZE);
+    }
+
+    public RecordReader(ReadableByteChannel channel, int bufferSize) {
+        this(null, channel, bufferSize, DEFAULT_MAX_RECORD_SIZE);
+    }
+
+    /**
+     * @param channel       blocking channel with bencoded records
+     * @param bufferSize    initial buffer size
+     * @param maxRecordSize maximal size of a record in bytes, a larger record is a framing error
+     */
+    public RecordReader(ReadableByteChannel channel, int bufferSize, int maxRecordSize) {
+        this(null, channel, bufferSize, maxRecordSize);
+    }
+
+    private RecordReader(InputStream inputStream, ReadableByteChannel channel, int bufferSize, int maxRecordSize) {
+        if (bufferSize <= 0)
+            throw new IllegalArgumentException("Buffer size must be positive: " + bufferSize);
+        if (maxRecordSize <= 0 || maxRecordSize > MAX_ARRAY_SIZE)
+            throw new IllegalArgumentException("Maximal record size must be between 1 and " + MAX_ARRAY_SIZE + ": " + maxRecordSize);
+
+        this.inputStream = inputStream;
+        this.channel = channel;
+        this.buffer = new byte[bufferSize];
+        this.maxRecordSize = maxRecordSize;
+    }
+
+    /**
+     * Reads and decodes the next record
+     *
+     * @return BencodeType instance with decoded data or null at the end of the stream
+     * @throws IOException
+     * @throws bencode.exception.InconsistentInputException
+     * @throws java.lang.NumberFormatException
+     */
+    public BencodeType read() throws IOException {
+        return decodeNext(true);
+    }
+
+    private BencodeType decodeNext(boolean block) throws IOException {
+        throwDeferred();
+
+        int recordEnd = nextRecord(block);
+        if (recordEnd < 0)
+            return null;
+
+        // move past the record first, so a record failing to decode is skipped
+        int recordStart = start;
+        start = recordEnd;
+        return BencodeType.decode(new ByteArrayInputStream(buffer, recordStart, recordEnd - recordStart));
+    }
+
+    /**
+     * Reads and decodes up to the given number of records
+     *
+     * @param maxRecords maximal batch size, must be positive
+     * @return decoded records, empty list at the end of the stream
+     * @throws IOException
+     * @throws bencode.exception.InconsistentInputException
+     * @throws java.lang.NumberFormatException
+     */
+    public List<BencodeType> readBatch(int maxRecords) throws IOException {
+        checkBatchSize(maxRecords);
+
+        List<BencodeType> batch = new ArrayList<>(Math.min(maxRecords, 1024));
+
+        try {
+            BencodeType bencodeType;
+            while (batch.size() < maxRecords && (bencodeType = decodeNext(batch.isEmpty())) != null)
+                batch.add(bencodeType);
+        } catch (IOException | RuntimeException e) {
+            defer(batch, e);
+        }
+
+        return batch;
+    }
+
+    /**
+     * Reads the next record without decoding it
+     *
+     * @return bencoded bytes of the record or null at the end of the stream
+     * @throws IOException
+     * @throws bencode.exception.InconsistentInputException
+     */
+    public byte[] readRecord() throws IOException {
+        return copyNext(true);
+    }
+
+    private byte[] copyNext(boolean block) throws IOException {
+        throwDeferred();
+
+        int recordEnd = nextRecord(block);
+        if (recordEnd < 0)
+            return null;
+
+        byte[] record = Arrays.copyOfRange(buffer, start, recordEnd);
+        start = recordEnd;
+        return record;
+    }
+
+    /**
+     * Reads up to the given number of records without decoding them
+     *
+     * @param maxRecords maximal batch size, must be positive
+     * @return bencoded bytes of the records, empty list at the end of the stream
+     * @throws IOException
+     * @throws bencode.exception.InconsistentInputException
+     */
+    public List<byte[]> readRecordBatch(int maxRecords) throws IOException {
+        checkBatchSize(maxRecords);
+
+        List<byte[]> batch = new ArrayList<>(Math.min(maxRecords, 1024));
+
+        try {
+            byte[] record;
+            while (batch.size() < maxRecords && (record = copyNext(batch.isEmpty())) != null)
+                batch.add(record);
+        } catch (IOException | RuntimeException e) {
+            defer(batch, e);
+        }
+
+        return batch;
+    }
+
+    /**
+     * Closes the source. This is the only method which may be called from another thread: it aborts a read blocked in the source.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        if (inputStream != null)
+            inputStream.close();
+        else
+            channel.close();
+    }
+
+    private static void checkBatchSize(int maxRecords) {
+        if (maxRecords <= 0)
+            throw new IllegalArgumentException("Batch size must be positive: " + maxRecords);
+    }
+
+    /**
+     * Keeps the exception for the next call if the batch already holds records, so they are not lost
+     */
+    private void defer(List<?> batch, Exception e) throws IOException {
+        if (batch.isEmpty())
+            rethrow(e);
+        deferred = e;
+    }
+
+    private void throwDeferred() throws IOException {
+        Exception e = deferred;
+        if (e != null) {
+            deferred = null;
+            rethrow(e);
+        }
+    }
+
+    private static void rethrow(Exception e) throws IOException {
+        if (e instanceof IOException)
+            throw (IOException) e;
+        throw (RuntimeException) e;
+    }
+
+    /**
+     * Finds the end of the record starting at the start position, filling the buffer as needed
+     *
+     * @param block false to look at the buffered bytes only
+     * @return index after the end of the record, or -1 at the end of the stream or if no buffered record is complete
+     */
+    private int nextRecord(boolean block) throws IOException {
+        if (failure != null)
+            throw failure;
+
+        try {
+            return scanRecord(block);
+        } catch (IOException e) {
+            failure = e;
+            throw e;
+        }
+    }
+
+    private int scanRecord(boolean block) throws IOException {
+        while (true) {
+            if (scanned < end) {
+                int recordEnd = scanner.scan(buffer, scanned, end);
+
+                if (recordEnd >= 0) {
+                    checkRecordSize(recordEnd - start);
+                    scanned = recordEnd;
+                    return recordEnd;
+                }
+
+                scanned = end;
+            }
+
+            // the buffer may be larger than the maximal record size, so the size is checked here and not on growth only
+            if (start < end)
+                checkRecordSize(end - start + 1L);
+
+            if (!block && !eof)
+                return -1;
+
+            if (eof || !fill()) {
+                eof = true;
+                if (start < end)
+                    throw new InconsistentInputException("Unexpected end of stream inside a record of " + (end - start) + " bytes");
+                return -1;
+            }
+        }
+    }
+
+    private void checkRecordSize(long size) throws InconsistentInputException {
+        if (size > maxRecordSize)
+            throw new InconsistentInputException("Record is larger than " + maxRecordSize + " bytes");
+    }
+
+    /**
+     * Reads more bytes after the end position, compacting or growing the buffer first when it is full.
+     * The buffer grows up to the maximal record size only.
+     *
+     * @return false at the end of the stream
+     */
+    private boolean fill() throws IOException {
+        if (end == buffer.length) {
+            if (start > 0) {
+                System.arraycopy(buffer, start, buffer, 0, end - start);
+                scanned -= start;
+                end -= start;
+                start = 0;
+            } else {
+                if (buffer.length >= maxRecordSize)
+                    throw new InconsistentInputException("Record is larger than " + maxRecordSize + " bytes");
+                buffer = Arrays.copyOf(buffer, (int) Math.min(buffer.length * 2L, maxRecordSize));
+            }
+        }
+
+        int n;
+        if (inputStream != null) {
+            n = inputStream.read(buffer, end, buffer.length - end);
+        } else {
+            ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, end, buffer.length - end);
+            do {
+                n = channel.read(byteBuffer);
+            } while (n == 0);
+        }
+
+        if (n < 0)
+            return false;
+
+        end += n;
+        return true;
+    }
+}
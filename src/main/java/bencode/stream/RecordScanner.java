@@ -0,0 +1,103 @@
+package bencode.stream;
+
+import bencode.exception.InconsistentInputException;
+import bencode.type.BencodeType;
+
+/**
+ * Resumable scanner locating the end of a bencoded value without decoding it
+ * <p>
+ * The scanner keeps its state between calls, so a record split over several reads is scanned only once. Only the structure
+ * needed to find the boundary is checked: start literals, digits of integers and byte string sizes, and nesting of lists
+ * and dictionaries. The full check is left to the decoder.
+ */
+class RecordScanner {
+    private static final int STATE_VALUE = 0;
+    private static final int STATE_INT = 1;
+    private static final int STATE_LENGTH = 2;
+    private static final int STATE_BODY = 3;
+
+    private int state = STATE_VALUE;
+    private int depth;
+    private long length;
+
+    /**
+     * Scans bytes of the given range continuing from the previous call
+     *
+     * @param buffer bytes to scan
+     * @param from   first byte to scan
+     * @param to     end of the range, exclusive
+     * @return index after the last byte of the record, or -1 if the record does not end in the range
+     * @throws InconsistentInputException
+     */
+    int scan(byte[] buffer, int from, int to) throws InconsistentInputException {
+        int i = from;
+
+        while (i < to) {
+            switch (state) {
+                case STATE_VALUE: {
+                    char c = (char) (buffer[i++] & 0xFF);
+
+                    if (c == BencodeType.START_LITERAL_INT_TYPE) {
+                        state = STATE_INT;
+                    } else if (Character.isDigit(c)) {
+                        length = c - '0';
+                        state = STATE_LENGTH;
+                    } else if (c == BencodeType.START_LITERAL_LIST_TYPE || c == BencodeType.START_LITERAL_DICTIONARY_TYPE) {
+                        depth++;
+                    } else if (c == BencodeType.END_LITERAL && depth > 0) {
+                        depth--;
+                        if (depth == 0)
+                            return i;
+                    } else {
+                        throw new InconsistentInputException("Wrong start literal: '" + c + "'");
+                    }
+                    break;
+                }
+                case STATE_INT: {
+                    char c = (char) (buffer[i++] & 0xFF);
+
+                    if (c == BencodeType.END_LITERAL) {
+                        if (endOfValue())
+                            return i;
+                    } else if (!Character.isDigit(c) && c != '-') {
+                        throw new InconsistentInputException("Wrong digit literal in integer type: '" + c + "'");
+                    }
+                    break;
+                }
+                case STATE_LENGTH: {
+                    char c = (char) (buffer[i++] & 0xFF);
+
+                    if (c == BencodeType.DELIMITER_LITERAL_BYTE_STRING_TYPE) {
+                        if (length == 0) {
+                            if (endOfValue())
+                                return i;
+                        } else {
+                            state = STATE_BODY;
+                        }
+                    } else if (!Character.isDigit(c)) {
+                        throw new InconsistentInputException("Wrong digit literal in byte string size: '" + c + "'");
+                    } else {
+                        length = length * 10 + (c - '0');
+                        if (length > Integer.MAX_VALUE)
+                            throw new InconsistentInputException("Byte string size is too large");
+                    }
+                    break;
+                }
+                default: {
+                    int n = (int) Math.min(length, to - i);
+                    i += n;
+                    length -= n;
+                    if (length == 0 && endOfValue())
+                        return i;
+                }
+            }
+        }
+
+        return -1;
+    }
+
+    private boolean endOfValue() {
+        state = STATE_VALUE;
+        return depth == 0;
+    }
+}
@@ -0,0 +1,75 @@
+package bencode.tape;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * Helpers for direct ByteBuffers used as tape storage
+ * <p>
+ * The JDK releases direct memory only when the owning buffer is collected, so {@link #free(ByteBuffer)} invokes the buffer cleaner
+ * explicitly: through sun.misc.Unsafe.invokeCleaner on Java 9+ and through DirectBuffer.cleaner() on Java 8.
+ * When neither is reachable the memory is left to the collector.
+ */
+final class DirectBuffers {
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private DirectBuffers() {
+    }
+
+    /**
+     * Allocates a new direct buffer with the given capacity and copies the readable bytes of the source into it.
+     * The source buffer is freed afterwards.
+     *
+     * @param source   direct buffer to copy, flipped for reading
+     * @param capacity capacity of the new buffer, not less than the number of readable bytes
+     * @return new direct buffer positioned after the copied bytes
+     */
+    static ByteBuffer resize(ByteBuffer source, int capacity) {
+        ByteBuffer target = ByteBuffer.allocateDirect(capacity);
+        target.put(source);
+        free(source);
+        return target;
+    }
+
+    /**
+     * Releases off-heap memory of the given direct buffer. The buffer must not be used afterwards.
+     *
+     * @param buffer direct ByteBuffer, may be null
+     */
+    static void free(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect())
+            return;
+
+        try {
+            if (INVOKE_CLEANER != null) {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            } else {
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null)
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // leave the memory to the garbage collector
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package bencode.tape;
+
+import bencode.type.BencodeType;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * <p>Cursor over values of a {@link TapeDocument}</p>
+ * <p>
+ * A cursor starts at the root value and moves with {@link #firstChild()}, {@link #nextSibling()} and {@link #parent()}.
+ * Dictionary entries are visited as a key followed by its value. Moving does not allocate, values are read straight from the tape.
+ */
+public class TapeCursor {
+    private final TapeDocument document;
+    private int index;
+    private int[] parents = new int[16];
+    private int depth;
+
+    TapeCursor(TapeDocument document) {
+        this.document = document;
+    }
+
+    /**
+     * @return one of TapeDocument.TAG_* constants
+     */
+    public int getType() {
+        return document.tag(index);
+    }
+
+    public boolean isInt() {
+        return getType() == TapeDocument.TAG_INT;
+    }
+
+    public boolean isByteString() {
+        return getType() == TapeDocument.TAG_BYTE_STRING;
+    }
+
+    public boolean isList() {
+        return getType() == TapeDocument.TAG_LIST;
+    }
+
+    public boolean isDictionary() {
+        return getType() == TapeDocument.TAG_DICTIONARY;
+    }
+
+    /**
+     * @return value of the current integer
+     * @throws IllegalStateException if the current value is not an integer
+     */
+    public int getInt() {
+        checkType(TapeDocument.TAG_INT);
+        return document.first(index);
+    }
+
+    /**
+     * @return copy of the current byte string contents
+     * @throws IllegalStateException if the current value is not a byte string
+     */
+    public byte[] getBytes() {
+        checkType(TapeDocument.TAG_BYTE_STRING);
+        return document.bytes(index);
+    }
+
+    /**
+     * @return read-only heap buffer with a copy of the current byte string contents, usable after the document is closed
+     * @throws IllegalStateException if the current value is not a byte string
+     */
+    public ByteBuffer getByteBuffer() {
+        return ByteBuffer.wrap(getBytes()).asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns read-only view of the current byte string contents without copying them.
+     * The view points into off-heap memory of the document and is not checked on access: reading it after the document
+     * is closed reads freed memory and may crash the JVM. Use {@link #getByteBuffer()} when the contents may outlive the document.
+     *
+     * @return ByteBuffer view
+     * @throws IllegalStateException if the current value is not a byte string
+     */
+    public ByteBuffer getByteBufferView() {
+        checkType(TapeDocument.TAG_BYTE_STRING);
+        return document.byteBuffer(index);
+    }
+
+    /**
+     * @return current byte string contents as String
+     * @throws IllegalStateException if the current value is not a byte string
+     */
+    public String getString() {
+        return new String(getBytes());
+    }
+
+    /**
+     * @return byte string length, number of list elements or number of dictionary entries
+     * @throws IllegalStateException if the current value is an integer
+     */
+    public int size() {
+        int tag = getType();
+        if (tag == TapeDocument.TAG_INT)
+            throw new IllegalStateException("Integer value has no size");
+        return tag == TapeDocument.TAG_BYTE_STRING ? document.second(index) : document.first(index);
+    }
+
+    /**
+     * @return nesting depth of the current value, 0 for the root
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Moves to the first element of the current list or dictionary
+     *
+     * @return false if the current value is not a container or is empty, the cursor stays in place then
+     */
+    public boolean firstChild() {
+        int tag = getType();
+        if ((tag != TapeDocument.TAG_LIST && tag != TapeDocument.TAG_DICTIONARY) || document.first(index) == 0)
+            return false;
+
+        if (depth == parents.length)
+            parents = Arrays.copyOf(parents, depth * 2);
+
+        parents[depth++] = index;
+        index++;
+        return true;
+    }
+
+    /**
+     * Moves to the next element of the enclosing list or dictionary
+     *
+     * @return false if the current value is the last one, the cursor stays in place then
+     */
+    public boolean nextSibling() {
+        if (depth == 0)
+            return false;
+
+        int next = document.skip(index);
+        if (next >= document.second(parents[depth - 1]))
+            return false;
+
+        index = next;
+        return true;
+    }
+
+    /**
+     * Moves to the enclosing list or dictionary
+     *
+     * @return false if the cursor is at the root, the cursor stays in place then
+     */
+    public boolean parent() {
+        if (depth == 0)
+            return false;
+
+        index = parents[--depth];
+        return true;
+    }
+
+    /**
+     * Looks up a key in the current dictionary and moves to its value
+     *
+     * @param key dictionary key compared byte to byte with byte string keys
+     * @return false if the current value is not a dictionary or has no such key, the cursor stays in place then
+     */
+    public boolean find(byte[] key) {
+        if (!isDictionary() || !firstChild())
+            return false;
+
+        do {
+            if (isByteString() && document.bytesEqual(index, key)) {
+                nextSibling();
+                return true;
+            }
+        } while (nextSibling() && nextSibling());
+
+        parent();
+        return false;
+    }
+
+    public boolean find(String key) {
+        return find(key.getBytes());
+    }
+
+    /**
+     * Materializes the current value with all its children into BencodeType instances
+     *
+     * @return BencodeType
+     */
+    public BencodeType toTree() {
+        return document.toTree(index);
+    }
+
+    private void checkType(int tag) {
+        if (getType() != tag)
+            throw new IllegalStateException("Wrong value type: " + getType() + ", expected: " + tag);
+    }
+}
@@ -0,0 +1,449 @@
+package bencode.tape;
+
+import bencode.exception.InconsistentInputException;
+import bencode.type.BencodeType;
+import bencode.type.ByteStringType;
+import bencode.type.DictionaryType;
+import bencode.type.IntType;
+import bencode.type.ListType;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+
+/**
+ * <p>Decoded bencode document stored as a flat tape in off-heap memory</p>
+ * <p>
+ * The source bytes and the tape are both held in direct ByteBuffers, so a resident document costs the heap a handful of objects
+ * regardless of its size. Every decoded value occupies one tape entry of three ints:
+ * <ul>
+ * <li>integer: tag, value, 0</li>
+ * <li>byte string: tag, offset of the contents in the source bytes, length</li>
+ * <li>list and dictionary: tag, number of elements (entries for dictionaries), index of the first entry after the container</li>
+ * </ul>
+ * Entries are written in document order, so children of a container follow it immediately and siblings are reached by skipping
+ * over the container end index.
+ * <p>
+ * Navigation is done with {@link TapeCursor}, {@link #toTree()} materializes the document into regular BencodeType instances.
+ * Off-heap memory is released by {@link #close()}; the document and its cursors must not be used afterwards.
+ */
+public class TapeDocument implements Closeable {
+    public static final int TAG_INT = 1;
+    public static final int TAG_BYTE_STRING = 2;
+    public static final int TAG_LIST = 3;
+    public static final int TAG_DICTIONARY = 4;
+
+    private static final int ENTRY_SIZE = 3 * Integer.BYTES;
+    private static final int MIN_CAPACITY = 64;
+    private static final int MAX_BUFFER_SIZE = Integer.MAX_VALUE - 8;
+
+    private ByteBuffer data;
+    private ByteBuffer tape;
+    private final int entryCount;
+
+    private TapeDocument(ByteBuffer data, ByteBuffer tape, int entryCount) {
+        this.data = data;
+        this.tape = tape;
+        this.entryCount = entryCount;
+    }
+
+    /**
+     * Decodes input String into a tape document
+     *
+     * @param input String with bencoded data
+     * @return TapeDocument
+     * @throws IOException
+     * @throws bencode.exception.InconsistentInputException
+     * @throws java.lang.NumberFormatException
+     */
+    public static TapeDocument decode(String input) throws IOException {
+        return decode(input.getBytes());
+    }
+
+    /**
+     * Decodes byte array into a tape document. The bytes are copied off-heap.
+     *
+     * @param input bencoded data holding exactly one value
+     * @return TapeDocument
+     * @throws IOException
+     * @throws bencode.exception.InconsistentInputException
+     * @throws java.lang.NumberFormatException
+     */
+    public static TapeDocument decode(byte[] input) throws IOException {
+        ByteBuffer data = ByteBuffer.allocateDirect(Math.max(input.length, 1));
+        data.put(input);
+        // Buffer casts keep calls on the Java 8 overloads when compiled by a newer JDK
+        ((Buffer) data).flip();
+        return decodeOwned(data);
+    }
+
+    /**
+     * Decodes InputStream into a tape document. The stream is read to its end and must hold exactly one value.
+     *
+     * @param inputStream InputStream with bencoded data
+     * @return TapeDocument
+     * @throws IOException
+     * @throws bencode.exception.InconsistentInputException
+     * @throws java.lang.NumberFormatException
+     */
+    public static TapeDocument decode(InputStream inputStream) throws IOException {
+        ByteBuffer data = ByteBuffer.allocateDirect(8192);
+        byte[] chunk = new byte[8192];
+
+        try {
+            int n;
+            while ((n = inputStream.read(chunk)) != -1) {
+                if (data.remaining() < n) {
+                    ((Buffer) data).flip();
+                    data = DirectBuffers.resize(data, grownCapacity(data.capacity(), (long) data.limit() + n, "Input"));
+                }
+                data.put(chunk, 0, n);
+            }
+
+            ((Buffer) data).flip();
+            if (data.limit() < data.capacity())
+                data = trim(data, data.limit());
+        } catch (IOException | RuntimeException e) {
+            DirectBuffers.free(data);
+            throw e;
+        }
+
+        return decodeOwned(data);
+    }
+
+    /**
+     * @return capacity at least doubling the current one and holding the required size
+     * @throws IOException if the required size does not fit into a direct buffer
+     */
+    private static int grownCapacity(int capacity, long required, String what) throws IOException {
+        if (required > MAX_BUFFER_SIZE)
+            throw new IOException(what + " is too large: " + required + " bytes");
+        return (int) Math.min(Math.max(capacity * 2L, required), MAX_BUFFER_SIZE);
+    }
+
+    /**
+     * Copies the first size bytes of the buffer into a buffer of exactly that capacity and frees the original one
+     */
+    private static ByteBuffer trim(ByteBuffer buffer, int size) {
+        ((Buffer) buffer).position(0);
+        ((Buffer) buffer).limit(size);
+        ByteBuffer trimmed = DirectBuffers.resize(buffer, size);
+        ((Buffer) trimmed).clear();
+        return trimmed;
+    }
+
+    private static TapeDocument decodeOwned(ByteBuffer data) throws IOException {
+        try {
+            return new Parser(data).parse();
+        } catch (IOException | RuntimeException e) {
+            DirectBuffers.free(data);
+            throw e;
+        }
+    }
+
+    /**
+     * @return new cursor positioned at the root value
+     */
+    public TapeCursor cursor() {
+        checkOpen();
+        return new TapeCursor(this);
+    }
+
+    /**
+     * Materializes the whole document into BencodeType instances
+     *
+     * @return BencodeType
+     */
+    public BencodeType toTree() {
+        return toTree(0);
+    }
+
+    /**
+     * @return number of tape entries, i.e. decoded values including nested ones
+     */
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * @return true if off-heap memory of this document has been released
+     */
+    public boolean isClosed() {
+        return tape == null;
+    }
+
+    /**
+     * Releases off-heap memory held by the document. Calling it more than once has no effect.
+     * <p>
+     * Cursors throw IllegalStateException afterwards, but views returned by {@link TapeCursor#getByteBufferView()} are not
+     * checked and must not be read any more. The document is not thread safe: close must not run while other threads read it,
+     * they could read freed memory.
+     */
+    @Override
+    public void close() {
+        ByteBuffer data = this.data;
+        ByteBuffer tape = this.tape;
+        this.data = null;
+        this.tape = null;
+        DirectBuffers.free(data);
+        DirectBuffers.free(tape);
+    }
+
+    /**
+     * @return String human-readable representation
+     */
+    @Override
+    public String toString() {
+        return isClosed() ? "{closed}" : toTree().toString();
+    }
+
+    int tag(int index) {
+        return field(index, 0);
+    }
+
+    int first(int index) {
+        return field(index, 1);
+    }
+
+    int second(int index) {
+        return field(index, 2);
+    }
+
+    /**
+     * @return index of the first entry after the value at the given index, including its children
+     */
+    int skip(int index) {
+        int tag = tag(index);
+        return tag == TAG_LIST || tag == TAG_DICTIONARY ? second(index) : index + 1;
+    }
+
+    byte[] bytes(int index) {
+        checkOpen();
+        byte[] bytes = new byte[second(index)];
+        ByteBuffer view = data.duplicate();
+        ((Buffer) view).position(first(index));
+        view.get(bytes);
+        return bytes;
+    }
+
+    boolean bytesEqual(int index, byte[] bytes) {
+        int offset = first(index);
+        if (second(index) != bytes.length)
+            return false;
+
+        for (int i = 0; i < bytes.length; i++)
+            if (data.get(offset + i) != bytes[i])
+                return false;
+
+        return true;
+    }
+
+    ByteBuffer byteBuffer(int index) {
+        checkOpen();
+        ByteBuffer view = data.asReadOnlyBuffer();
+        ((Buffer) view).position(first(index));
+        ((Buffer) view).limit(first(index) + second(index));
+        return view.slice();
+    }
+
+    BencodeType toTree(int index) {
+        switch (tag(index)) {
+            case TAG_INT:
+                return new IntType(first(index));
+            case TAG_BYTE_STRING:
+                return new ByteStringType(bytes(index));
+            case TAG_LIST: {
+                ArrayList<BencodeType> list = new ArrayList<>(first(index));
+                for (int child = index + 1; child < second(index); child = skip(child))
+                    list.add(toTree(child));
+                return new ListType(list);
+            }
+            default: {
+                LinkedHashMap<BencodeType, BencodeType> map = new LinkedHashMap<>();
+                for (int child = index + 1; child < second(index); ) {
+                    int value = skip(child);
+                    map.put(toTree(child), toTree(value));
+                    child = skip(value);
+                }
+                return new DictionaryType(map);
+            }
+        }
+    }
+
+    private int field(int index, int field) {
+        checkOpen();
+        return tape.getInt(index * ENTRY_SIZE + field * Integer.BYTES);
+    }
+
+    private void checkOpen() {
+        if (tape == null)
+            throw new IllegalStateException("Tape document is closed");
+    }
+
+    /**
+     * Single pass, non-recursive decoder writing tape entries. Container entries are back-patched with their size
+     * and end index when the closing 'e' literal is reached.
+     */
+    private static final class Parser {
+        private final ByteBuffer data;
+        private final int limit;
+        private ByteBuffer tape;
+        private int entries;
+        private int pos;
+
+        private int[] openContainers = new int[16];
+        private int[] childCounts = new int[16];
+        private int depth;
+
+        Parser(ByteBuffer data) {
+            this.data = data;
+            this.limit = data.limit();
+            long capacity = (long) Math.max(MIN_CAPACITY, limit / 8) * ENTRY_SIZE;
+            this.tape = ByteBuffer.allocateDirect((int) Math.min(capacity, MAX_BUFFER_SIZE - MAX_BUFFER_SIZE % ENTRY_SIZE));
+        }
+
+        TapeDocument parse() throws IOException {
+            try {
+                parseValue();
+                if (pos != limit)
+                    throw new InconsistentInputException("Unexpected data after the end of value at " + pos);
+                if (tape.capacity() > entries * ENTRY_SIZE)
+                    tape = trim(tape, entries * ENTRY_SIZE);
+                return new TapeDocument(data, tape, entries);
+            } catch (IOException | RuntimeException e) {
+                DirectBuffers.free(tape);
+                throw e;
+            }
+        }
+
+        private void parseValue() throws IOException {
+            do {
+                char c = next();
+
+                if (c == BencodeType.END_LITERAL) {
+                    if (depth == 0)
+                        throw new InconsistentInputException("Wrong start literal: 'e'");
+                    closeContainer();
+                    continue;
+                }
+
+                if (depth > 0)
+                    childCounts[depth - 1]++;
+
+                if (c == BencodeType.START_LITERAL_INT_TYPE)
+                    parseInt();
+                else if (Character.isDigit(c))
+                    parseByteString(c);
+                else if (c == BencodeType.START_LITERAL_LIST_TYPE)
+                    openContainer(TAG_LIST);
+                else if (c == BencodeType.START_LITERAL_DICTIONARY_TYPE)
+                    openContainer(TAG_DICTIONARY);
+                else
+                    throw new InconsistentInputException("Wrong start literal: '" + c + "'");
+            } while (depth > 0);
+        }
+
+        private void parseInt() throws IOException {
+            int start = pos;
+
+            while (true) {
+                char c = next();
+
+                if (c == BencodeType.END_LITERAL)
+                    break;
+
+                if (!Character.isDigit(c) && c != '-')
+                    throw new InconsistentInputException("Wrong digit literal in integer type: '" + c + "'");
+            }
+
+            byte[] digits = new byte[pos - 1 - start];
+            ByteBuffer view = data.duplicate();
+            ((Buffer) view).position(start);
+            view.get(digits);
+
+            append(TAG_INT, Integer.parseInt(new String(digits, StandardCharsets.US_ASCII)), 0);
+        }
+
+        private void parseByteString(char firstChar) throws IOException {
+            long length = firstChar - '0';
+
+            while (true) {
+                char c = next();
+
+                if (c == BencodeType.DELIMITER_LITERAL_BYTE_STRING_TYPE)
+                    break;
+
+                if (!Character.isDigit(c))
+                    throw new InconsistentInputException("Wrong digit literal in byte string size: '" + c + "'");
+
+                length = length * 10 + (c - '0');
+                if (length > Integer.MAX_VALUE)
+                    throw new NumberFormatException("Byte string size is too large");
+            }
+
+            if (length > limit - pos)
+                throw new InconsistentInputException("Unexpected end of input in byte string of size " + length);
+
+            append(TAG_BYTE_STRING, pos, (int) length);
+            pos += (int) length;
+        }
+
+        private void openContainer(int tag) throws IOException {
+            if (depth == openContainers.length) {
+                openContainers = Arrays.copyOf(openContainers, depth * 2);
+                childCounts = Arrays.copyOf(childCounts, depth * 2);
+            }
+
+            openContainers[depth] = entries;
+            childCounts[depth] = 0;
+            depth++;
+
+            append(tag, 0, 0);
+        }
+
+        private void closeContainer() throws IOException {
+            depth--;
+            int index = openContainers[depth];
+            int size = childCounts[depth];
+
+            if (tape.getInt(index * ENTRY_SIZE) == TAG_DICTIONARY) {
+                if (size % 2 != 0)
+                    throw new InconsistentInputException("Dictionary entry value is null.");
+                size /= 2;
+            }
+
+            tape.putInt(index * ENTRY_SIZE + Integer.BYTES, size);
+            tape.putInt(index * ENTRY_SIZE + 2 * Integer.BYTES, entries);
+        }
+
+        private void append(int tag, int first, int second) throws IOException {
+            if (tape.capacity() - entries * ENTRY_SIZE < ENTRY_SIZE) {
+                int capacity = grownCapacity(tape.capacity(), (long) (entries + 1) * ENTRY_SIZE, "Tape");
+
+                ((Buffer) tape).position(0);
+                ((Buffer) tape).limit(entries * ENTRY_SIZE);
+                tape = DirectBuffers.resize(tape, capacity - capacity % ENTRY_SIZE);
+                ((Buffer) tape).clear();
+            }
+
+            int offset = entries * ENTRY_SIZE;
+            tape.putInt(offset, tag);
+            tape.putInt(offset + Integer.BYTES, first);
+            tape.putInt(offset + 2 * Integer.BYTES, second);
+            entries++;
+        }
+
+        private char next() throws IOException {
+            if (pos >= limit)
+                throw new InconsistentInputException("Unexpected end of input");
+            return (char) (data.get(pos++) & 0xFF);
+        }
+    }
+
+}
@@ -79,7 +79,7 @@ public interface BencodeType {
      */
     static BencodeType decodeInternal(InputStream inputStream) throws IOException {
 
-        char c = (char) inputStream.read();
+        char c = readLiteral(inputStream);
 
         if (c == START_LITERAL_INT_TYPE)
             return IntType.decode(inputStream, c);
@@ -96,6 +96,23 @@ public interface BencodeType {
 
     }
 
+    /**
+     * Reads one literal from the InputStream
+     *
+     * @param inputStream InputStream with bencoded data
+     * @return next literal
+     * @throws IOException
+     * @throws bencode.exception.InconsistentInputException if the stream has ended
+     */
+    static char readLiteral(InputStream inputStream) throws IOException {
+        int b = inputStream.read();
+
+        if (b == -1)
+            throw new InconsistentInputException("Unexpected end of stream");
+
+        return (char) b;
+    }
+
     /**
      * This is wrapper over decodeInternal method to handle start 'e' literal exception
      *
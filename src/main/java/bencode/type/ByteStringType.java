@@ -57,7 +57,7 @@ public class ByteStringType implements BencodeType {
      * @throws java.lang.NumberFormatException
      */
     public static ByteStringType decode(InputStream inputStream) throws IOException {
-        return decode(inputStream, (char) inputStream.read());
+        return decode(inputStream, BencodeType.readLiteral(inputStream));
     }
 
     public static ByteStringType decode(InputStream inputStream, char firstChar) throws IOException {
@@ -72,7 +72,7 @@ public class ByteStringType implements BencodeType {
 
         // read number of following bytes
         while (true) {
-            c = (char) inputStream.read();
+            c = BencodeType.readLiteral(inputStream);
 
             if (c == DELIMITER_LITERAL_BYTE_STRING_TYPE) {
                 byteCnt = Integer.parseInt(sb.toString());
@@ -88,8 +88,12 @@ public class ByteStringType implements BencodeType {
         // read bytes
         byte[] bytes = new byte[byteCnt];
 
-        for (int i = 0; i < byteCnt; i++)
-            bytes[i] = (byte) inputStream.read();
+        for (int i = 0, n; i < byteCnt; i += n) {
+            n = inputStream.read(bytes, i, byteCnt - i);
+
+            if (n == -1)
+                throw new InconsistentInputException("Unexpected end of stream in byte string of size " + byteCnt);
+        }
 
 
         return new ByteStringType(bytes);
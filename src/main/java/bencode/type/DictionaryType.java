@@ -71,7 +71,7 @@ public class DictionaryType implements BencodeType {
      * @throws IOException
      */
     public static DictionaryType decode(InputStream inputStream) throws IOException {
-        return decode(inputStream, (char) inputStream.read());
+        return decode(inputStream, BencodeType.readLiteral(inputStream));
     }
 
     public static DictionaryType decode(InputStream inputStream, char firstChar) throws IOException {
@@ -51,7 +51,7 @@ public class IntType implements BencodeType {
      * @throws IOException
      */
     public static IntType decode(InputStream inputStream) throws IOException {
-        return decode(inputStream, (char) inputStream.read());
+        return decode(inputStream, BencodeType.readLiteral(inputStream));
     }
 
     public static IntType decode(InputStream inputStream, char firstChar) throws IOException {
@@ -63,7 +63,7 @@ public class IntType implements BencodeType {
         StringBuilder sb = new StringBuilder();
 
         while (true) {
-            c = (char) inputStream.read();
+            c = BencodeType.readLiteral(inputStream);
 
             if (c == END_LITERAL)
                 return new IntType(Integer.parseInt(sb.toString()));
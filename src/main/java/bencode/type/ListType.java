@@ -64,7 +64,7 @@ public class ListType implements BencodeType {
      * @throws IOException
      */
     public static ListType decode(InputStream inputStream) throws IOException {
-        return decode(inputStream, (char) inputStream.read());
+        return decode(inputStream, BencodeType.readLiteral(inputStream));
     }
 
     public static ListType decode(InputStream inputStream, char firstChar) throws IOException {
@@ -1,9 +1,11 @@
 package bencode;
 
+import bencode.exception.InconsistentInputException;
 import bencode.type.BencodeType;
 import bencode.type.ByteStringType;
 import junit.framework.TestCase;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 
 public class ByteStringTypeTest extends TestCase {
@@ -48,4 +50,17 @@ public class ByteStringTypeTest extends TestCase {
 
         assertEquals(BencodeType.decode("12:рукаface").encode(), "12:рукаface");
     }
+
+    public void testTruncated() throws IOException {
+        String[] inputs = {"5:ab", "12", "3:"};
+
+        for (String input : inputs) {
+            try {
+                BencodeType.decode(new ByteArrayInputStream(input.getBytes()));
+                fail(input);
+            } catch (InconsistentInputException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("Unexpected end of stream"));
+            }
+        }
+    }
 }
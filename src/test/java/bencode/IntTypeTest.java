@@ -1,9 +1,11 @@
 package bencode;
 
+import bencode.exception.InconsistentInputException;
 import bencode.type.BencodeType;
 import bencode.type.IntType;
 import junit.framework.TestCase;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 
 public class IntTypeTest extends TestCase {
@@ -37,4 +39,17 @@ public class IntTypeTest extends TestCase {
 
         assertEquals(((IntType) BencodeType.decode(new IntType(-44).encode())).getValue(), -44);
     }
+
+    public void testTruncated() throws IOException {
+        String[] inputs = {"i12", "i", "i-"};
+
+        for (String input : inputs) {
+            try {
+                BencodeType.decode(new ByteArrayInputStream(input.getBytes()));
+                fail(input);
+            } catch (InconsistentInputException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("Unexpected end of stream"));
+            }
+        }
+    }
 }
@@ -0,0 +1,438 @@
+package bencode;
+
+import bencode.exception.InconsistentInputException;
+import bencode.stream.PipelinedRecordReader;
+import bencode.stream.RecordReader;
+import bencode.type.BencodeType;
+import bencode.type.ByteStringType;
+import bencode.type.IntType;
+import bencode.type.ListType;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class RecordReaderTest extends TestCase {
+
+    public void testRead() throws IOException {
+        RecordReader reader = new RecordReader(new ByteArrayInputStream("i1e4:spamli2e0:ed1:ai-3eei0e".getBytes()));
+
+        assertEquals(reader.read().encode(), "i1e");
+        assertEquals(reader.read().encode(), "4:spam");
+        assertEquals(reader.read().encode(), "li2e0:e");
+        assertEquals(reader.read().encode(), "d1:ai-3ee");
+        assertEquals(reader.read().encode(), "i0e");
+        assertNull(reader.read());
+        assertNull(reader.read());
+
+        assertNull(new RecordReader(new ByteArrayInputStream(new byte[0])).read());
+    }
+
+    public void testReadBatch() throws IOException {
+        String input = records(1000);
+
+        // small buffer makes records span several reads
+        RecordReader reader = new RecordReader(Channels.newChannel(new ByteArrayInputStream(input.getBytes())), 7);
+
+        int count = 0;
+        List<BencodeType> batch;
+        while (!(batch = reader.readBatch(64)).isEmpty()) {
+            assertTrue(batch.size() <= 64);
+            for (BencodeType bencodeType : batch) {
+                assertTrue(bencodeType instanceof ListType);
+                assertEquals(((IntType) ((ListType) bencodeType).getList().get(0)).getValue(), count++);
+            }
+        }
+
+        assertEquals(count, 1000);
+    }
+
+    public void testTruncatedRecord() throws IOException {
+        String[] inputs = {"i1e4:spa", "i1eli2e", "i1ei2", "i1e3"};
+
+        for (String input : inputs) {
+            RecordReader reader = new RecordReader(new ByteArrayInputStream(input.getBytes()));
+            assertEquals(reader.read().encode(), "i1e");
+
+            try {
+                reader.read();
+                fail(input);
+            } catch (InconsistentInputException e) {
+                // expected
+            }
+        }
+    }
+
+    public void testPartialBatch() throws IOException {
+        RecordReader reader = new RecordReader(new ByteArrayInputStream("i1ei2ei3eli4e".getBytes()));
+
+        List<BencodeType> batch = reader.readBatch(10);
+        assertEquals(batch.size(), 3);
+        assertEquals(batch.get(2).encode(), "i3e");
+
+        try {
+            reader.readBatch(10);
+            fail();
+        } catch (InconsistentInputException e) {
+            // expected
+        }
+
+        reader = new RecordReader(new ByteArrayInputStream("i1ei--ei3e".getBytes()));
+        assertEquals(reader.readBatch(10).size(), 1);
+
+        try {
+            reader.readBatch(10);
+            fail();
+        } catch (NumberFormatException e) {
+            // expected
+        }
+
+        batch = reader.readBatch(10);
+        assertEquals(batch.size(), 1);
+        assertEquals(batch.get(0).encode(), "i3e");
+        assertTrue(reader.readBatch(10).isEmpty());
+    }
+
+    public void testBatchDoesNotWaitForMoreRecords() throws IOException {
+        // a live stream: two records have arrived, the next read would block
+        InputStream inputStream = new InputStream() {
+            private boolean delivered;
+
+            @Override
+            public int read() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (delivered)
+                    throw new IOException("would block");
+                delivered = true;
+                byte[] records = "i1ei2ei3".getBytes();
+                System.arraycopy(records, 0, b, off, records.length);
+                return records.length;
+            }
+        };
+
+        RecordReader reader = new RecordReader(inputStream);
+        assertEquals(reader.readBatch(10).size(), 2);
+
+        try {
+            reader.readBatch(10);
+            fail();
+        } catch (IOException e) {
+            assertEquals(e.getMessage(), "would block");
+        }
+    }
+
+    public void testBatchSize() throws IOException {
+        RecordReader reader = new RecordReader(new ByteArrayInputStream("i1e".getBytes()));
+
+        for (int maxRecords : new int[]{0, -1}) {
+            try {
+                reader.readBatch(maxRecords);
+                fail();
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+
+            try {
+                reader.readRecordBatch(maxRecords);
+                fail();
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+
+        assertEquals(reader.readBatch(1).size(), 1);
+    }
+
+    public void testBadRecord() throws IOException {
+        RecordReader reader = new RecordReader(new ByteArrayInputStream("i--ei2ed1:aei3e".getBytes()));
+
+        try {
+            reader.read();
+            fail();
+        } catch (NumberFormatException e) {
+            // expected
+        }
+        assertEquals(reader.read().encode(), "i2e");
+
+        try {
+            reader.read();
+            fail();
+        } catch (InconsistentInputException e) {
+            // expected
+        }
+        assertEquals(reader.read().encode(), "i3e");
+        assertNull(reader.read());
+
+        reader = new RecordReader(new ByteArrayInputStream("i1exi2e".getBytes()));
+        assertEquals(reader.read().encode(), "i1e");
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                reader.read();
+                fail();
+            } catch (InconsistentInputException e) {
+                // framing errors are not recoverable
+            }
+        }
+    }
+
+    public void testMaxRecordSize() throws IOException {
+        RecordReader reader = new RecordReader(new ByteArrayInputStream("i1e2000000000:abc".getBytes()), 4, 64);
+        assertEquals(reader.read().encode(), "i1e");
+
+        try {
+            reader.read();
+            fail();
+        } catch (InconsistentInputException e) {
+            // expected
+        }
+
+        // buffer larger than the maximal record size
+        String bytes = new String(new byte[100]);
+        reader = new RecordReader(new ByteArrayInputStream(("100:" + bytes).getBytes()), 1024, 64);
+
+        try {
+            reader.read();
+            fail();
+        } catch (InconsistentInputException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Record is larger"));
+        }
+
+        reader = new RecordReader(new ByteArrayInputStream(("i2e60:" + bytes.substring(40)).getBytes()), 1024, 64);
+        assertEquals(reader.read().encode(), "i2e");
+        assertEquals(((ByteStringType) reader.read()).getValue().length, 60);
+
+        try (PipelinedRecordReader pipelined = new PipelinedRecordReader(new RecordReader(new ByteArrayInputStream(("i1e2000000000:" + records(100)).getBytes()), 4, 64), 10, 2)) {
+            assertEquals(pipelined.nextBatch().size(), 1);
+
+            try {
+                pipelined.nextBatch();
+                fail();
+            } catch (InconsistentInputException e) {
+                // expected
+            }
+        }
+    }
+
+    public void testPipelined() throws IOException {
+        String input = records(10000);
+
+        try (PipelinedRecordReader reader = new PipelinedRecordReader(new RecordReader(new ByteArrayInputStream(input.getBytes()), 1024), 100, 4)) {
+            int count = 0;
+            List<BencodeType> batch;
+            while (!(batch = reader.nextBatch()).isEmpty()) {
+                for (BencodeType bencodeType : batch)
+                    assertEquals(((IntType) ((ListType) bencodeType).getList().get(0)).getValue(), count++);
+            }
+
+            assertEquals(count, 10000);
+            assertTrue(reader.nextBatch().isEmpty());
+        }
+
+        // 1005 records do not fill the last batch, the torn record after them must not lose it
+        input = records(1005) + "li1e";
+
+        try (PipelinedRecordReader reader = new PipelinedRecordReader(new RecordReader(new ByteArrayInputStream(input.getBytes())), 100, 2)) {
+            int count = 0;
+            try {
+                List<BencodeType> batch;
+                while (!(batch = reader.nextBatch()).isEmpty())
+                    count += batch.size();
+                fail();
+            } catch (InconsistentInputException e) {
+                assertEquals(count, 1005);
+            }
+
+            try {
+                reader.nextBatch();
+                fail();
+            } catch (InconsistentInputException e) {
+                // framing errors are thrown by every later call
+            }
+        }
+
+        input = records(50) + "i--e" + records(50);
+
+        try (PipelinedRecordReader reader = new PipelinedRecordReader(new RecordReader(new ByteArrayInputStream(input.getBytes())), 30, 3)) {
+            int count = 0;
+            int failures = 0;
+
+            while (true) {
+                try {
+                    List<BencodeType> batch = reader.nextBatch();
+                    if (batch.isEmpty())
+                        break;
+                    for (BencodeType bencodeType : batch)
+                        assertEquals(((IntType) ((ListType) bencodeType).getList().get(0)).getValue(), count++ % 50);
+                } catch (NumberFormatException e) {
+                    assertEquals(count, 50);
+                    failures++;
+                }
+            }
+
+            assertEquals(count, 100);
+            assertEquals(failures, 1);
+        }
+    }
+
+    public void testPipelinedErrorTypes() throws IOException {
+        try (PipelinedRecordReader reader = new PipelinedRecordReader(new RecordReader(failingStream(new OutOfMemoryError("huge record"))), 10, 2)) {
+            for (int i = 0; i < 2; i++) {
+                try {
+                    reader.nextBatch();
+                    fail();
+                } catch (OutOfMemoryError e) {
+                    assertEquals(e.getMessage(), "huge record");
+                }
+            }
+        }
+
+        try (PipelinedRecordReader reader = new PipelinedRecordReader(new RecordReader(failingStream(new IllegalStateException("broken source"))), 10, 2)) {
+            try {
+                reader.nextBatch();
+                fail();
+            } catch (IllegalStateException e) {
+                assertEquals(e.getMessage(), "broken source");
+            }
+        }
+    }
+
+    private static InputStream failingStream(Throwable failure) {
+        return new InputStream() {
+            @Override
+            public int read() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (failure instanceof Error)
+                    throw (Error) failure;
+                throw (RuntimeException) failure;
+            }
+        };
+    }
+
+    public void testPipelinedClose() throws IOException {
+        AtomicBoolean closed = new AtomicBoolean();
+        InputStream inputStream = new ByteArrayInputStream(records(10000).getBytes()) {
+            @Override
+            public void close() {
+                closed.set(true);
+            }
+        };
+
+        PipelinedRecordReader reader = new PipelinedRecordReader(new RecordReader(inputStream, 1024), 10, 2, 1);
+        assertEquals(reader.nextBatch().size(), 10);
+
+        // the I/O thread is blocked on the full queue, close has to stop it and wait for the reader to be closed
+        reader.close();
+        assertTrue(closed.get());
+
+        // closed early is not the end of the stream
+        try {
+            reader.nextBatch();
+            fail();
+        } catch (IOException e) {
+            assertEquals(e.getMessage(), "Reader is closed");
+        }
+    }
+
+    public void testPipelinedCloseWakesConsumer() throws Exception {
+        PipelinedRecordReader reader = new PipelinedRecordReader(new RecordReader(new StalledInputStream(new byte[0])), 10, 2);
+        AtomicReference<Throwable> result = new AtomicReference<>();
+
+        Thread consumer = new Thread(() -> {
+            try {
+                reader.nextBatch();
+            } catch (Throwable e) {
+                result.set(e);
+            }
+        });
+        consumer.start();
+
+        Thread.sleep(100);
+        reader.close();
+
+        consumer.join(5000);
+        assertFalse(consumer.isAlive());
+        assertTrue(String.valueOf(result.get()), result.get() instanceof IOException);
+    }
+
+    public void testPipelinedCloseStalledStream() throws Exception {
+        RecordReader source = new RecordReader(new StalledInputStream(records(10).getBytes()));
+        PipelinedRecordReader reader = new PipelinedRecordReader(source, 10, 2);
+        assertEquals(reader.nextBatch().size(), 10);
+
+        // the I/O thread is blocked in a read which an interrupt does not wake
+        Thread closer = new Thread(() -> {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        closer.start();
+        closer.join(5000);
+        assertFalse(closer.isAlive());
+    }
+
+    /**
+     * InputStream like a quiet socket: delivers the given bytes, then blocks until it is closed
+     */
+    private static class StalledInputStream extends InputStream {
+        private final CountDownLatch closed = new CountDownLatch(1);
+        private byte[] data;
+
+        StalledInputStream(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public int read() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (data != null) {
+                int n = Math.min(len, data.length);
+                System.arraycopy(data, 0, b, off, n);
+                data = n == data.length ? null : Arrays.copyOfRange(data, n, data.length);
+                return n;
+            }
+
+            while (closed.getCount() > 0) {
+                try {
+                    closed.await();
+                } catch (InterruptedException e) {
+                    // like a socket read, not interruptible
+                }
+            }
+            throw new IOException("Stream closed");
+        }
+
+        @Override
+        public void close() {
+            closed.countDown();
+        }
+    }
+
+    private static String records(int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++)
+            sb.append("li").append(i).append("e5:valued3:keyi").append(i % 10).append("e5:value9:abcdefghiee");
+        return sb.toString();
+    }
+}
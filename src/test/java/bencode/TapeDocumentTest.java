@@ -0,0 +1,157 @@
+package bencode;
+
+import bencode.exception.InconsistentInputException;
+import bencode.tape.TapeCursor;
+import bencode.tape.TapeDocument;
+import bencode.type.BencodeType;
+import bencode.type.DictionaryType;
+import bencode.type.ListType;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public class TapeDocumentTest extends TestCase {
+
+    public void testDecode() throws IOException {
+        try (TapeDocument document = TapeDocument.decode("d4:name4:spam4:listli1ei-2e3:zzze5:emptyle5:innerde1:ni7ee")) {
+            assertEquals(document.getEntryCount(), 14);
+
+            TapeCursor cursor = document.cursor();
+            assertTrue(cursor.isDictionary());
+            assertEquals(cursor.size(), 5);
+
+            assertTrue(cursor.find("name"));
+            assertTrue(cursor.isByteString());
+            assertEquals(cursor.getString(), "spam");
+            assertEquals(cursor.getByteBuffer().remaining(), 4);
+            assertEquals(cursor.getByteBufferView(), cursor.getByteBuffer());
+
+            assertTrue(cursor.parent());
+            assertTrue(cursor.find("list"));
+            assertTrue(cursor.isList());
+            assertEquals(cursor.size(), 3);
+            assertTrue(cursor.firstChild());
+            assertEquals(cursor.getDepth(), 2);
+            assertEquals(cursor.getInt(), 1);
+            assertTrue(cursor.nextSibling());
+            assertEquals(cursor.getInt(), -2);
+            assertTrue(cursor.nextSibling());
+            assertEquals(cursor.getString(), "zzz");
+            assertFalse(cursor.nextSibling());
+
+            assertTrue(cursor.parent());
+            assertTrue(cursor.parent());
+            assertTrue(cursor.find("empty"));
+            assertFalse(cursor.firstChild());
+            assertTrue(cursor.nextSibling());
+            assertEquals(cursor.getString(), "inner");
+            assertTrue(cursor.nextSibling());
+            assertTrue(cursor.isDictionary());
+            assertEquals(cursor.size(), 0);
+            assertTrue(cursor.nextSibling());
+            assertTrue(cursor.nextSibling());
+            assertEquals(cursor.getInt(), 7);
+            assertFalse(cursor.nextSibling());
+
+            assertTrue(cursor.parent());
+            assertFalse(cursor.find("missing"));
+            assertTrue(cursor.isDictionary());
+            assertFalse(cursor.parent());
+        }
+    }
+
+    public void testTransit() throws IOException {
+        String input = "dl3:hubi-3ee4:testi-1ei2ee";
+
+        try (TapeDocument document = TapeDocument.decode(new ByteArrayInputStream(input.getBytes()))) {
+            BencodeType tree = document.toTree();
+
+            assertTrue(tree instanceof DictionaryType);
+            assertEquals(tree.encode(), input);
+            assertEquals(tree.encode(), BencodeType.decode(input).encode());
+        }
+
+        try (TapeDocument document = TapeDocument.decode("l6:Glitchi-1e4:хаe")) {
+            TapeCursor cursor = document.cursor();
+            assertTrue(cursor.firstChild());
+            assertTrue(cursor.nextSibling());
+            assertTrue(cursor.nextSibling());
+            assertEquals(cursor.toTree().toString(), "ха");
+
+            assertTrue(document.toTree() instanceof ListType);
+        }
+    }
+
+    public void testLargeDocument() throws IOException {
+        StringBuilder sb = new StringBuilder("l");
+        for (int i = 0; i < 10000; i++)
+            sb.append("li").append(i).append("e3:abce");
+        sb.append("e");
+
+        try (TapeDocument document = TapeDocument.decode(sb.toString())) {
+            assertEquals(document.getEntryCount(), 30001);
+            assertEquals(document.toTree().encode(), sb.toString());
+
+            TapeCursor cursor = document.cursor();
+            assertTrue(cursor.firstChild());
+            int count = 1;
+            while (cursor.nextSibling())
+                count++;
+            assertEquals(count, 10000);
+            assertTrue(cursor.firstChild());
+            assertEquals(cursor.getInt(), 9999);
+        }
+    }
+
+    public void testLargeStream() throws IOException {
+        StringBuilder sb = new StringBuilder("d");
+        for (int i = 0; i < 5000; i++)
+            sb.append("3:k").append((char) ('a' + i % 26)).append(i % 10).append("li").append(i).append("e5:valuee");
+        sb.append("e");
+
+        // larger than the initial 8192 bytes buffer, so the input buffer has to grow several times
+        try (TapeDocument document = TapeDocument.decode(new ByteArrayInputStream(sb.toString().getBytes()))) {
+            assertEquals(document.toTree().encode(), BencodeType.decode(sb.toString()).encode());
+
+            TapeCursor cursor = document.cursor();
+            assertTrue(cursor.find("kz5"));
+            assertTrue(cursor.firstChild());
+            assertEquals(cursor.getInt(), 25);
+        }
+    }
+
+    public void testClose() throws IOException {
+        TapeDocument document = TapeDocument.decode("l1:ai1ee");
+        TapeCursor cursor = document.cursor();
+        assertTrue(cursor.firstChild());
+        ByteBuffer copy = cursor.getByteBuffer();
+
+        document.close();
+        document.close();
+        assertTrue(document.isClosed());
+
+        try {
+            cursor.getByteBufferView();
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        assertEquals(copy.get(0), 'a');
+    }
+
+    public void testInconsistentInput() throws IOException {
+        String[] inputs = {"", "e", "li1e", "d1:ae", "5:abc", "i1x", "x", "i1ei2e"};
+
+        for (String input : inputs) {
+            try {
+                TapeDocument.decode(input).close();
+                fail(input);
+            } catch (InconsistentInputException e) {
+                // expected
+            }
+        }
+    }
+}